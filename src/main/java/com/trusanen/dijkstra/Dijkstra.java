@@ -1,44 +1,126 @@
 package com.trusanen.dijkstra;
 
-import com.trusanen.dijkstra.heap.MinBinaryHeap;
-import com.trusanen.dijkstra.models.Edge;
+import com.trusanen.dijkstra.heap.IndexMinBinaryHeap;
 import com.trusanen.dijkstra.models.Graph;
+import com.trusanen.dijkstra.models.IndexedGraph;
 import com.trusanen.dijkstra.models.Node;
+import com.trusanen.dijkstra.storage.DoubleArray;
+import com.trusanen.dijkstra.storage.HeapStorage;
+import com.trusanen.dijkstra.storage.IntArray;
+import com.trusanen.dijkstra.storage.Storage;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 
 /*
   An implementation of the Dijkstra's shortest path
   algorithm with a binary heap.
   Worst-case performance is O(|E| + |V| * log |V|)
+
+  The search runs on an IndexedGraph and keeps the tree in
+  arrays allocated from a Storage, so the same code runs with the
+  graph and the tree on or off the Java heap, and the Node
+  objects of a Graph are never mutated.
  */
 public class Dijkstra {
-    Node root;
-    Node[] nodes;
+    final IndexedGraph graph;
+    final Node[] nodes; // null when built without Node objects
+    final Storage storage;
+    final DoubleArray dist;
+    final IntArray predecessor; // edge towards the root, -1 at the root or if unreachable
+    final IndexMinBinaryHeap heap; // null for a restored tree
+    int root;
+
     public Dijkstra(Graph g, Node root) {
+        this(IndexedGraph.of(g, new HeapStorage()), g.nodes, new HeapStorage());
+        search(indexOf(g.nodes, root));
+    }
+
+    /*
+      Grows the tree rooted at node 'root' of 'g', with the tree
+      allocated from 'storage'. Both storages are held open while
+      searching. Paths are only available as node indices, see
+      getPathIndices.
+     */
+    public Dijkstra(IndexedGraph g, int root, Storage storage) {
+        this(g, null, storage);
+        search(root);
+    }
+
+    // Allocates the tree without searching, see search
+    Dijkstra(IndexedGraph g, Node[] nodes, Storage storage) {
+        this.graph = g;
+        this.nodes = nodes;
+        this.storage = storage;
+        dist = storage.newDoubleArray(g.size());
+        predecessor = storage.newIntArray(g.size());
+        heap = new IndexMinBinaryHeap(g.size(), storage);
+    }
+
+    private Dijkstra(IndexedGraph g, Node[] nodes, int root, DoubleArray dist, IntArray predecessor) {
+        this.graph = g;
+        this.nodes = nodes;
+        this.storage = g.storage;
         this.root = root;
-        nodes = g.nodes; // TODO: duplicate nodes
+        this.dist = dist;
+        this.predecessor = predecessor;
+        this.heap = null;
+    }
 
-        // Add the edges to the nodes for the nodes to know their
-        // neighbourhood
-        for (Edge e : g.edges) { // O(|E|)
-            e.src.edges.add(e);
-            e.dst.edges.add(e);
+    /*
+      Wraps a shortest path tree that has already been computed,
+      e.g. one restored from a snapshot, without running the search
+      again. 'nodes' may be null, 'predecessor' holds the edge
+      towards the root as in getPredecessorEdge.
+     */
+    public static Dijkstra fromTree(IndexedGraph g, Node[] nodes, int root,
+                                    DoubleArray dist, IntArray predecessor) {
+        if (dist.length() != g.size() || predecessor.length() != g.size())
+            throw new IllegalArgumentException("Tree arrays differ in length from the graph");
+        checkNode(g, root);
+        return new Dijkstra(g, nodes, root, dist, predecessor);
+    }
+
+    private static int indexOf(Node[] nodes, Node node) {
+        for (int i = 0 ; i < nodes.length ; i++) {
+            if (nodes[i] == node) return i;
         }
+        throw new IllegalArgumentException("Root is not a node of the graph");
+    }
+
+    private static void checkNode(IndexedGraph g, int i) {
+        if (i < 0 || i >= g.size())
+            throw new IllegalArgumentException("Node " + i + " out of range");
+    }
 
-        // Initialize heap
-        MinBinaryHeap q = new MinBinaryHeap(nodes.length);
-        for (int i = 0; i < nodes.length ; i++) { // O(|V| * log |V|)
-            Node n = nodes[i];
-            if (n.equals(root)) n.dist = 0;
-            else n.dist = Double.MAX_VALUE;
-            q.insert(n); // O(log |V|)
+    /*
+      (Re)grows the tree from 'root', reusing the arrays of the
+      previous search.
+     */
+    void search(int root) {
+        if (heap == null) throw new IllegalStateException("A restored tree cannot be searched again");
+        checkNode(graph, root);
+        graph.storage.acquire();
+        try {
+            storage.acquire();
+            try {
+                grow(root);
+            } finally {
+                storage.release();
+            }
+        } finally {
+            graph.storage.release();
         }
+    }
 
-        HashSet<Node> nodesVisited = new HashSet<Node>();
+    private void grow(int root) {
+        this.root = root;
+        dist.fill(Double.POSITIVE_INFINITY);
+        predecessor.fill(-1);
+        heap.clear();
+
+        dist.set(root, 0);
+        heap.insert(root, 0);
         /*
         *  Loop is bound by O(|E| * T_dp + |V| * T_gm),
         *  where T_dp and T_gm are the time-complexities
@@ -47,31 +129,79 @@ public class Dijkstra {
         *  Thus we have worst-case performance of
         *  O((|E| + |V|) * log |V|)
         */
-        while(!q.isEmpty()) {
-            Node curr = q.getMin(); // O(log |V|)
-            nodesVisited.add(curr); // O(1)
-
-            for (Edge e : curr.edges) {
-                Node other = e.getOther(curr);
-                if (!nodesVisited.contains(other)) { // O(1)
-                    double newDist = curr.dist + e.weight;
-                    if (newDist < other.dist) {
-                        other.predecessor = curr;
-                        q.decreasePriority(other, newDist); // O(log |V|)
-                    }
+        while (!heap.isEmpty()) {
+            int curr = heap.getMin(); // O(log |V|)
+            double currDist = dist.get(curr);
+            for (int j = graph.firstEdge.get(curr) ; j < graph.firstEdge.get(curr + 1) ; j++) {
+                int e = graph.adjacent.get(j);
+                int other = graph.other(e, curr);
+                // Weights are non-negative, so a settled node
+                // never gets a shorter distance here
+                double newDist = currDist + graph.weight.get(e);
+                double oldDist = dist.get(other);
+                if (newDist < oldDist) {
+                    dist.set(other, newDist);
+                    predecessor.set(other, e);
+                    if (oldDist == Double.POSITIVE_INFINITY) heap.insert(other, newDist);
+                    else heap.decreasePriority(other, newDist); // O(log |V|)
                 }
             }
         }
     }
 
+    public IndexedGraph getGraph() {
+        return graph;
+    }
+
+    public int getRootIndex() {
+        return root;
+    }
+
+    public Node getRoot() {
+        if (nodes == null)
+            throw new IllegalStateException("Built from an IndexedGraph, use getRootIndex instead");
+        return nodes[root];
+    }
+
+    /*
+      Distance from the root to node i, infinite if unreachable.
+     */
+    public double getDistance(int i) {
+        return dist.get(i);
+    }
+
+    /*
+      The edge on the shortest path from node i towards the root,
+      -1 at the root or if i is unreachable.
+     */
+    public int getPredecessorEdge(int i) {
+        return predecessor.get(i);
+    }
+
     public List<Node> getPath(int i) {
-        List<Node> path = new ArrayList<Node>();
-        Node curr = nodes[i];
-        do {
-            path.add(curr);
-            curr = curr.predecessor;
-        } while(curr != null);
-        Collections.reverse(path);
+        if (nodes == null)
+            throw new IllegalStateException("Built from an IndexedGraph, use getPathIndices instead");
+        int[] indices = getPathIndices(i);
+        List<Node> path = new ArrayList<Node>(indices.length);
+        for (int v : indices) path.add(nodes[v]);
+        return path;
+    }
+
+    /*
+      The nodes on the path from the root to node i. Just i if it
+      is unreachable.
+     */
+    public int[] getPathIndices(int i) {
+        int length = 1;
+        for (int v = i, e = predecessor.get(v) ; e != -1 ; e = predecessor.get(v)) {
+            v = graph.other(e, v);
+            length++;
+        }
+        int[] path = new int[length];
+        for (int j = length - 1, v = i ; j >= 0 ; j--) {
+            path[j] = v;
+            if (j > 0) v = graph.other(predecessor.get(v), v);
+        }
         return path;
     }
-}
\ No newline at end of file
+}
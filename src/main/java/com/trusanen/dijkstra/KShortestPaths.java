@@ -0,0 +1,361 @@
+package com.trusanen.dijkstra;
+
+import com.trusanen.dijkstra.heap.IndexMinBinaryHeap;
+import com.trusanen.dijkstra.models.Graph;
+import com.trusanen.dijkstra.models.IndexedGraph;
+import com.trusanen.dijkstra.models.Node;
+import com.trusanen.dijkstra.storage.DoubleArray;
+import com.trusanen.dijkstra.storage.HeapStorage;
+import com.trusanen.dijkstra.storage.IntArray;
+import com.trusanen.dijkstra.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+/*
+  Yen's algorithm for the k shortest loopless paths between
+  two nodes of an undirected graph.
+
+  The search runs on an IndexedGraph, so the Node objects are
+  never mutated and several spur searches can run in parallel,
+  each with its own search state. Search states are pooled by the
+  instance and allocated from a Storage, so both the graph and the
+  state can be kept on or off the Java heap with the same search
+  code.
+
+  Every query first grows a full shortest path tree rooted at
+  the target with Dijkstra. A spur search then
+    - returns the tree path straight away when it avoids all the
+      edges and nodes masked for that spur (it is optimal, since
+      masking can only make paths longer), and
+    - otherwise runs A* with the tree distances as the heuristic,
+      which stays admissible and consistent under masking.
+  Nothing is copied to mask the graph for a spur search: the root
+  path's nodes are marked settled in the pooled search state, and
+  the removed edges all leave the spur node, so they are kept in a
+  small array and only checked there.
+ */
+public class KShortestPaths {
+    final IndexedGraph graph;
+    final Node[] nodes; // null when built without Node objects
+    final Storage storage;
+
+    // Idle search states, one is borrowed per running search
+    private final ConcurrentLinkedQueue<SearchState> states = new ConcurrentLinkedQueue<SearchState>();
+    // Idle shortest path trees, one is borrowed per running query
+    private final ConcurrentLinkedQueue<Dijkstra> trees = new ConcurrentLinkedQueue<Dijkstra>();
+
+    public KShortestPaths(Graph g) {
+        this(IndexedGraph.of(g, new HeapStorage()), g.nodes, new HeapStorage());
+    }
+
+    /*
+      Searches 'g' with the search state allocated from
+      'storage'. The caller owns both; queries hold them open while
+      running and throw an IllegalStateException once either has
+      been closed. Paths are only available as node
+      indices, see getPathIndices.
+     */
+    public KShortestPaths(IndexedGraph g, Storage storage) {
+        this(g, null, storage);
+    }
+
+    private KShortestPaths(IndexedGraph g, Node[] nodes, Storage storage) {
+        this.graph = g;
+        this.nodes = nodes;
+        this.storage = storage;
+    }
+
+    private SearchState borrowState() {
+        SearchState s = states.poll();
+        return s != null ? s : new SearchState(graph.size(), storage);
+    }
+
+    private void returnState(SearchState s) {
+        states.offer(s);
+    }
+
+    private Dijkstra borrowTree() {
+        Dijkstra tree = trees.poll();
+        return tree != null ? tree : new Dijkstra(graph, null, storage);
+    }
+
+    private void returnTree(Dijkstra tree) {
+        trees.offer(tree);
+    }
+
+    /*
+      Returns at most k loopless paths from nodes[from] to nodes[to]
+      in order of non-decreasing length. Fewer are returned if the
+      graph does not have k distinct loopless paths between them.
+     */
+    public List<List<Node>> getPaths(int from, int to, int k) {
+        if (nodes == null)
+            throw new IllegalStateException("Built from an IndexedGraph, use getPathIndices instead");
+        List<List<Node>> result = new ArrayList<List<Node>>();
+        for (int[] p : getPathIndices(from, to, k)) {
+            List<Node> path = new ArrayList<Node>(p.length);
+            for (int v : p) path.add(nodes[v]);
+            result.add(path);
+        }
+        return result;
+    }
+
+    /*
+      As getPaths, but each path is given as the indices of its nodes.
+     */
+    public List<int[]> getPathIndices(int from, int to, int k) {
+        if (k <= 0) throw new IllegalArgumentException("k must be positive, was " + k);
+        graph.storage.acquire();
+        try {
+            storage.acquire();
+            try {
+                Dijkstra tree = borrowTree();
+                try {
+                    tree.search(to);
+                    return getPathIndices(from, tree, k);
+                } finally {
+                    returnTree(tree);
+                }
+            } finally {
+                storage.release();
+            }
+        } finally {
+            graph.storage.release();
+        }
+    }
+
+    private List<int[]> getPathIndices(int from, Dijkstra tree, int k) {
+        List<int[]> result = new ArrayList<int[]>();
+        if (tree.dist.get(from) == Double.POSITIVE_INFINITY) return result;
+
+        List<PathEntry> accepted = new ArrayList<PathEntry>();
+        PriorityQueue<PathEntry> candidates = new PriorityQueue<PathEntry>();
+        Set<List<Integer>> seen = new HashSet<List<Integer>>();
+
+        PathEntry first = pathFromAvoiding(tree, from, null, new int[0], 0);
+        accepted.add(first);
+        seen.add(first.edgeList());
+
+        while (accepted.size() < k) {
+            PathEntry last = accepted.get(accepted.size() - 1);
+            // The spur searches of one path are independent of each other
+            PathEntry[] spurs = new PathEntry[last.edges.length];
+            IntStream.range(0, last.edges.length).parallel()
+                    .forEach(i -> spurs[i] = spurPath(tree, accepted, last, i));
+            for (PathEntry p : spurs) {
+                if (p != null && seen.add(p.edgeList())) candidates.add(p);
+            }
+            if (candidates.isEmpty()) break;
+            accepted.add(candidates.poll());
+        }
+
+        for (PathEntry p : accepted) {
+            result.add(p.nodes);
+        }
+        return result;
+    }
+
+    /*
+      Deviates from 'path' at its i:th node: the root path up to
+      the spur node is kept and the rest is replaced by the
+      shortest path that avoids the root path's nodes and the next
+      edge of every accepted path sharing the same root.
+     */
+    private PathEntry spurPath(Dijkstra tree, List<PathEntry> accepted, PathEntry path, int i) {
+        int spur = path.nodes[i];
+        // Paths sharing the root path all continue from the spur node
+        int[] removedEdges = new int[accepted.size()];
+        int removed = 0;
+        for (PathEntry p : accepted) {
+            if (p.edges.length > i && p.sharesRoot(path, i)) {
+                removedEdges[removed++] = p.edges[i];
+            }
+        }
+
+        PathEntry tail;
+        SearchState s = borrowState();
+        try {
+            s.reset();
+            for (int j = 0 ; j < i ; j++) {
+                s.settled.set(path.nodes[j], s.round);
+            }
+            tail = pathFromAvoiding(tree, spur, s, removedEdges, removed);
+            if (tail == null) tail = search(s, spur, tree, removedEdges, removed);
+        } finally {
+            returnState(s);
+        }
+        if (tail == null) return null;
+
+        int[] pathNodes = new int[i + tail.nodes.length];
+        int[] pathEdges = new int[i + tail.edges.length];
+        System.arraycopy(path.nodes, 0, pathNodes, 0, i);
+        System.arraycopy(tail.nodes, 0, pathNodes, i, tail.nodes.length);
+        System.arraycopy(path.edges, 0, pathEdges, 0, i);
+        System.arraycopy(tail.edges, 0, pathEdges, i, tail.edges.length);
+        return new PathEntry(pathNodes, pathEdges, path.prefixCost(i) + tail.cost);
+    }
+
+    /*
+      The tree path from 'from' to the tree's root, or null if it
+      crosses a node settled in 's' or starts with a removed edge.
+     */
+    private PathEntry pathFromAvoiding(Dijkstra tree, int from, SearchState s,
+                                       int[] removedEdges, int removed) {
+        IntArray next = tree.predecessor;
+        if (next.get(from) != -1 && contains(removedEdges, removed, next.get(from))) return null;
+        int length = 0;
+        for (int v = from ; v != tree.root ; length++) {
+            int e = next.get(v);
+            if (e == -1) return null;
+            v = graph.other(e, v);
+            if (s != null && s.settled.get(v) == s.round) return null;
+        }
+        int[] pathNodes = new int[length + 1];
+        int[] pathEdges = new int[length];
+        pathNodes[0] = from;
+        for (int j = 0 ; j < length ; j++) {
+            int v = pathNodes[j];
+            pathEdges[j] = next.get(v);
+            pathNodes[j + 1] = graph.other(pathEdges[j], v);
+        }
+        return new PathEntry(pathNodes, pathEdges, tree.dist.get(from));
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int j = 0 ; j < length ; j++) {
+            if (values[j] == value) return true;
+        }
+        return false;
+    }
+
+    /*
+      A* from 'from' to the tree's root over the unmasked graph,
+      guided by the exact unmasked distances to the root. Expects
+      's' to be reset with the masked nodes already settled.
+     */
+    private PathEntry search(SearchState s, int from, Dijkstra tree,
+                             int[] removedEdges, int removed) {
+        s.visit(from, 0, -1);
+        s.heap.insert(from, tree.dist.get(from));
+        while (!s.heap.isEmpty()) {
+            int curr = s.heap.getMin();
+            if (curr == tree.root) return s.pathTo(from, curr);
+            s.settled.set(curr, s.round);
+            double currDist = s.dist.get(curr);
+            for (int j = graph.firstEdge.get(curr) ; j < graph.firstEdge.get(curr + 1) ; j++) {
+                int e = graph.adjacent.get(j);
+                int other = graph.other(e, curr);
+                if (curr == from && contains(removedEdges, removed, e)) continue;
+                if (s.settled.get(other) == s.round) continue;
+                double h = tree.dist.get(other);
+                if (h == Double.POSITIVE_INFINITY) continue;
+                double newDist = currDist + graph.weight.get(e);
+                if (s.visited.get(other) != s.round) {
+                    s.visit(other, newDist, e);
+                    s.heap.insert(other, newDist + h);
+                } else if (newDist < s.dist.get(other)) {
+                    s.visit(other, newDist, e);
+                    // With a large h the sum can round to the queued priority
+                    double priority = newDist + h;
+                    if (priority < s.heap.priority(other)) s.heap.decreasePriority(other, priority);
+                }
+            }
+        }
+        return null;
+    }
+
+    /*
+      State of a single search. Entries are only valid when their
+      stamp equals the current round, so resetting is O(1) instead
+      of O(|V|).
+     */
+    private class SearchState {
+        final DoubleArray dist;
+        final IntArray predecessor; // edge used to reach the node
+        final IntArray visited;
+        final IntArray settled;
+        final IndexMinBinaryHeap heap;
+        int round = 0;
+
+        SearchState(int n, Storage storage) {
+            dist = storage.newDoubleArray(n);
+            predecessor = storage.newIntArray(n);
+            visited = storage.newIntArray(n);
+            settled = storage.newIntArray(n);
+            heap = new IndexMinBinaryHeap(n, storage);
+        }
+
+        void reset() {
+            heap.clear();
+            round++;
+        }
+
+        void visit(int v, double d, int edge) {
+            visited.set(v, round);
+            dist.set(v, d);
+            predecessor.set(v, edge);
+        }
+
+        PathEntry pathTo(int from, int to) {
+            List<Integer> edgeList = new ArrayList<Integer>();
+            for (int v = to ; v != from ; ) {
+                int e = predecessor.get(v);
+                edgeList.add(e);
+                v = graph.other(e, v);
+            }
+            Collections.reverse(edgeList);
+            int[] pathEdges = new int[edgeList.size()];
+            int[] pathNodes = new int[pathEdges.length + 1];
+            pathNodes[0] = from;
+            for (int j = 0 ; j < pathEdges.length ; j++) {
+                int e = edgeList.get(j);
+                pathEdges[j] = e;
+                pathNodes[j + 1] = graph.other(e, pathNodes[j]);
+            }
+            return new PathEntry(pathNodes, pathEdges, dist.get(to));
+        }
+    }
+
+    private class PathEntry implements Comparable<PathEntry> {
+        final int[] nodes;
+        final int[] edges;
+        final double cost;
+
+        PathEntry(int[] nodes, int[] edges, double cost) {
+            this.nodes = nodes;
+            this.edges = edges;
+            this.cost = cost;
+        }
+
+        double prefixCost(int i) {
+            double c = 0;
+            for (int j = 0 ; j < i ; j++) c += graph.weight.get(edges[j]);
+            return c;
+        }
+
+        boolean sharesRoot(PathEntry o, int i) {
+            for (int j = 0 ; j < i ; j++) {
+                if (edges[j] != o.edges[j]) return false;
+            }
+            return true;
+        }
+
+        List<Integer> edgeList() {
+            List<Integer> list = new ArrayList<Integer>(edges.length);
+            for (int e : edges) list.add(e);
+            return list;
+        }
+
+        @Override
+        public int compareTo(PathEntry o) {
+            return Double.compare(cost, o.cost);
+        }
+    }
+}
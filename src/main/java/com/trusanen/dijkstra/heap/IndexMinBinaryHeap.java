@@ -0,0 +1,133 @@
+package com.trusanen.dijkstra.heap;
+
+import com.trusanen.dijkstra.storage.DoubleArray;
+import com.trusanen.dijkstra.storage.HeapStorage;
+import com.trusanen.dijkstra.storage.IntArray;
+import com.trusanen.dijkstra.storage.Storage;
+
+/**
+ * A minimum binary heap over integer ids 0..maxN-1 with
+ * double priorities.
+ *
+ * Unlike MinBinaryHeap the priorities and heap positions live
+ * in primitive arrays owned by the heap instead of in the Node
+ * objects, so several heaps can run searches over the same
+ * graph at the same time, e.g. one per thread.
+ *
+ * Ids may be inserted at any time, also after extractions, and
+ * clear() empties the heap in O(size) so an instance can be
+ * reused between searches without reallocating.
+ *
+ * The arrays are allocated from a Storage, so the heap can live
+ * on or off the Java heap.
+ */
+public class IndexMinBinaryHeap {
+    int n;
+    IntArray heap; // heap[i] <=> id at heap position i
+    IntArray position; // position[id] <=> heap position of id, -1 if not in heap
+    DoubleArray priority;
+
+    public IndexMinBinaryHeap(int maxN) {
+        this(maxN, new HeapStorage());
+    }
+
+    public IndexMinBinaryHeap(int maxN, Storage storage) {
+        n = 0;
+        heap = storage.newIntArray(maxN);
+        position = storage.newIntArray(maxN);
+        priority = storage.newDoubleArray(maxN);
+        position.fill(-1);
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return n == 0;
+    }
+
+    public boolean contains(int id) {
+        return position.get(id) != -1;
+    }
+
+    public double priority(int id) {
+        return priority.get(id);
+    }
+
+    public void insert(int id, double p) {
+        if (contains(id)) throw new IllegalStateException("Id " + id + " already in heap");
+        heap.set(n, id);
+        position.set(id, n);
+        priority.set(id, p);
+        n++;
+        bubble(n-1);
+    }
+
+    public void decreasePriority(int id, double p) {
+        if (priority.get(id) <= p)
+            throw new IllegalArgumentException("New priority not smaller than original!");
+        priority.set(id, p);
+        bubble(position.get(id));
+    }
+
+    public int getMin() {
+        int id = heap.get(0);
+        exchange(0, n-1);
+        position.set(id, -1);
+        n--;
+        sink(0);
+        return id;
+    }
+
+    public void clear() {
+        for (int i = 0 ; i < n ; i++) {
+            position.set(heap.get(i), -1);
+        }
+        n = 0;
+    }
+
+    void exchange(int i, int j) {
+        int a = heap.get(i);
+        int b = heap.get(j);
+        heap.set(i, b);
+        heap.set(j, a);
+        position.set(b, i);
+        position.set(a, j);
+    }
+
+    boolean smaller(int i, int j) {
+        return priority.get(heap.get(i)) <= priority.get(heap.get(j));
+    }
+
+    void bubble(int i) {
+        int curr = i;
+        while (curr > 0 && !smaller((curr-1)/2, curr)) {
+            exchange(curr, (curr-1)/2);
+            curr = (curr-1)/2;
+        }
+    }
+
+    void sink(int i) {
+        int curr = i;
+        while (2*curr+1 < n) {
+            int child = 2*curr+1;
+            if (child+1 < n && smaller(child+1, child)) child++;
+            if (smaller(curr, child)) return;
+            exchange(curr, child);
+            curr = child;
+        }
+    }
+
+    boolean validate() {
+        // validates the heap, O(n), for testing purposes only
+        for (int i = 0 ; i < n ; i++) {
+            if (position.get(heap.get(i)) != i)
+                throw new IllegalStateException("Id had wrong heap position at " + i);
+            if (i > 0 && !smaller((i-1)/2, i))
+                throw new IllegalStateException("Heap relation was not satisfied with " +
+                        i + " and it's parent");
+        }
+        return true;
+    }
+}
@@ -15,6 +15,15 @@ public class Edge {
         weight = (float)Math.sqrt(Math.pow(begin.x - end.x,2) + Math.pow(begin.y - end.y,2));
     }
 
+    // For weights computed already, e.g. ones loaded from a snapshot
+    public Edge(int id, Node begin, Node end, float weight) {
+        this.id = id;
+
+        src = begin;
+        dst = end;
+        this.weight = weight;
+    }
+
     public Node getOther(Node n) {
         if (src.equals(n)) return dst;
         else if (dst.equals(n)) return src;
@@ -0,0 +1,136 @@
+package com.trusanen.dijkstra.models;
+
+import com.trusanen.dijkstra.storage.DoubleArray;
+import com.trusanen.dijkstra.storage.IntArray;
+import com.trusanen.dijkstra.storage.Storage;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * An undirected graph stored as primitive arrays instead of
+ * Node and Edge objects, with nodes and edges identified by index.
+ *
+ * The incident edges of node v are adjacent[firstEdge[v]] ..
+ * adjacent[firstEdge[v+1]-1], in no particular order. Self-loops
+ * are kept in src/dst but left out of the adjacency.
+ *
+ * Where the arrays live is decided by the Storage they are
+ * allocated from, which also owns their lifecycle.
+ */
+public class IndexedGraph {
+    public final Storage storage;
+    public final DoubleArray x;
+    public final DoubleArray y;
+    public final IntArray src;
+    public final IntArray dst;
+    public final DoubleArray weight;
+    public final IntArray firstEdge;
+    public final IntArray adjacent;
+
+    /**
+     * Builds the graph from node coordinates and edge endpoints
+     * already allocated from the given storage. Edge weights are
+     * the euclidean distances between the endpoints, as in Edge.
+     */
+    public IndexedGraph(Storage storage, DoubleArray x, DoubleArray y, IntArray src, IntArray dst) {
+        if (x.length() != y.length() || src.length() != dst.length())
+            throw new IllegalArgumentException("Coordinate or endpoint arrays differ in length");
+        this.storage = storage;
+        this.x = x;
+        this.y = y;
+        this.src = src;
+        this.dst = dst;
+        int n = x.length();
+        int m = src.length();
+
+        weight = storage.newDoubleArray(m);
+        firstEdge = storage.newIntArray(n + 1);
+        int degrees = 0;
+        for (int e = 0 ; e < m ; e++) {
+            int a = src.get(e);
+            int b = dst.get(e);
+            if (a < 0 || a >= n || b < 0 || b >= n)
+                throw new IllegalArgumentException("Edge " + e + " has an endpoint out of range");
+            weight.set(e, (float)Math.sqrt(Math.pow(x.get(a) - x.get(b), 2) + Math.pow(y.get(a) - y.get(b), 2)));
+            if (a == b) continue;
+            firstEdge.set(a, firstEdge.get(a) + 1);
+            firstEdge.set(b, firstEdge.get(b) + 1);
+            degrees += 2;
+        }
+
+        // Turn the degrees into end offsets and fill each range
+        // backwards, leaving firstEdge[v] at the start of v's range
+        for (int v = 1 ; v < n ; v++) {
+            firstEdge.set(v, firstEdge.get(v) + firstEdge.get(v - 1));
+        }
+        firstEdge.set(n, degrees);
+        adjacent = storage.newIntArray(degrees);
+        for (int e = 0 ; e < m ; e++) {
+            int a = src.get(e);
+            int b = dst.get(e);
+            if (a == b) continue;
+            firstEdge.set(a, firstEdge.get(a) - 1);
+            adjacent.set(firstEdge.get(a), e);
+            firstEdge.set(b, firstEdge.get(b) - 1);
+            adjacent.set(firstEdge.get(b), e);
+        }
+    }
+
+    /**
+     * Wraps a graph whose weights and adjacency have already been
+     * computed, e.g. one loaded from a snapshot, without touching
+     * the arrays beyond checking their lengths.
+     */
+    public IndexedGraph(Storage storage, DoubleArray x, DoubleArray y, IntArray src, IntArray dst,
+                        DoubleArray weight, IntArray firstEdge, IntArray adjacent) {
+        if (x.length() != y.length() || src.length() != dst.length() || weight.length() != src.length()
+                || firstEdge.length() != x.length() + 1)
+            throw new IllegalArgumentException("Array lengths do not match");
+        this.storage = storage;
+        this.x = x;
+        this.y = y;
+        this.src = src;
+        this.dst = dst;
+        this.weight = weight;
+        this.firstEdge = firstEdge;
+        this.adjacent = adjacent;
+    }
+
+    /**
+     * Copies a Graph into arrays allocated from the given storage,
+     * with node i of the result being g.nodes[i].
+     */
+    public static IndexedGraph of(Graph g, Storage storage) {
+        int n = g.nodes.length;
+        int m = g.edges.length;
+        Map<Node, Integer> index = new IdentityHashMap<Node, Integer>(2 * n);
+        DoubleArray x = storage.newDoubleArray(n);
+        DoubleArray y = storage.newDoubleArray(n);
+        for (int i = 0 ; i < n ; i++) {
+            index.put(g.nodes[i], i);
+            x.set(i, g.nodes[i].x);
+            y.set(i, g.nodes[i].y);
+        }
+        IntArray src = storage.newIntArray(m);
+        IntArray dst = storage.newIntArray(m);
+        for (int e = 0 ; e < m ; e++) {
+            src.set(e, index.get(g.edges[e].src));
+            dst.set(e, index.get(g.edges[e].dst));
+        }
+        return new IndexedGraph(storage, x, y, src, dst);
+    }
+
+    public int size() {
+        return x.length();
+    }
+
+    public int edgeCount() {
+        return src.length();
+    }
+
+    public int other(int e, int v) {
+        int a = src.get(e);
+        return a == v ? dst.get(e) : a;
+    }
+}
@@ -20,6 +20,14 @@ public class Node implements Comparable<Node> {
     public List<Edge> edges;
     public int heapIndex;
 
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
     @Override
     public int compareTo(Node o) {
         return Double.compare(this.dist, o.dist);
@@ -0,0 +1,421 @@
+package com.trusanen.dijkstra.snapshot;
+
+import com.trusanen.dijkstra.Dijkstra;
+import com.trusanen.dijkstra.models.Edge;
+import com.trusanen.dijkstra.models.Graph;
+import com.trusanen.dijkstra.models.IndexedGraph;
+import com.trusanen.dijkstra.models.Node;
+import com.trusanen.dijkstra.storage.DoubleArray;
+import com.trusanen.dijkstra.storage.HeapStorage;
+import com.trusanen.dijkstra.storage.IntArray;
+import com.trusanen.dijkstra.storage.MappedStorage;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A versioned, checksummed on-disk snapshot of an indexed graph
+ * and optionally a shortest path tree computed on it.
+ *
+ * The file is a fixed 48 byte header followed by raw little-endian
+ * primitive sections, so no object graph is ever serialized:
+ *
+ *   header:  magic, version, flags, |V|, |E|, root, |adjacent|,
+ *            reserved, payload length, CRC32
+ *   doubles: x[|V|], y[|V|], weight[|E|], (dist[|V|] if the tree flag is set)
+ *   ints:    src[|E|], dst[|E|], firstEdge[|V|+1], adjacent[|adjacent|],
+ *            (predecessor edge[|V|] if the tree flag is set)
+ *
+ * The CRC32 covers the header up to the checksum and the payload.
+ * Doubles come first so every section is naturally aligned.
+ *
+ * Snapshots are streamed to a temporary file next to the target
+ * and atomically moved in place, so a reader never sees a half
+ * written file. A replaced snapshot keeps its permissions, a new one
+ * is created readable by everyone.
+ *
+ * Reading validates the header, checksum and indices and memory maps
+ * every section separately into a MappedStorage, so the graph and
+ * the tree are used straight from the file without being rebuilt.
+ * Only a single section is limited to Integer.MAX_VALUE bytes. The
+ * snapshot must be closed to unmap the file.
+ */
+public class GraphSnapshot implements Closeable {
+    static final int MAGIC = 0x534B4A44; // "DJKS" in little-endian
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 48;
+    static final int FLAG_TREE = 1;
+
+    private static final int CHUNK = 1 << 16;
+    private static final Set<PosixFilePermission> DEFAULT_PERMISSIONS =
+            PosixFilePermissions.fromString("rw-r--r--");
+
+    private final IndexedGraph graph;
+    private final Dijkstra tree;
+    private Graph objects; // built on first use
+
+    private GraphSnapshot(IndexedGraph graph, Dijkstra tree) {
+        this.graph = graph;
+        this.tree = tree;
+    }
+
+    /**
+     * Returns the graph as mapped from the file. It is only valid
+     * until the snapshot is closed.
+     */
+    public IndexedGraph getIndexedGraph() {
+        return graph;
+    }
+
+    /**
+     * Builds the graph as Node and Edge objects, with node i and
+     * edge i being node and edge i of the indexed graph. The objects
+     * hold copies and stay valid after the snapshot is closed.
+     */
+    public synchronized Graph getGraph() {
+        if (objects != null) return objects;
+        graph.storage.acquire();
+        try {
+            int n = graph.size();
+            int m = graph.edgeCount();
+            Node[] nodes = new Node[n];
+            for (int i = 0 ; i < n ; i++) {
+                nodes[i] = new Node(graph.x.get(i), graph.y.get(i));
+            }
+            Edge[] edges = new Edge[m];
+            for (int i = 0 ; i < m ; i++) {
+                edges[i] = new Edge(i, nodes[graph.src.get(i)], nodes[graph.dst.get(i)], (float)graph.weight.get(i));
+            }
+            objects = new Graph(nodes, edges);
+            return objects;
+        } finally {
+            graph.storage.release();
+        }
+    }
+
+    public boolean hasTree() {
+        return tree != null;
+    }
+
+    /**
+     * Returns the restored shortest path tree, or null if the
+     * snapshot was written without one. The tree is mapped from the
+     * file like the graph, so paths are only available as node
+     * indices.
+     */
+    public Dijkstra getTree() {
+        return tree;
+    }
+
+    /**
+     * Unmaps the file. The indexed graph and the tree must not be
+     * used after this.
+     */
+    @Override
+    public void close() {
+        graph.storage.close();
+    }
+
+    public static void write(Path file, Graph g) throws IOException {
+        write(file, IndexedGraph.of(g, new HeapStorage()), null);
+    }
+
+    public static void write(Path file, Graph g, Dijkstra tree) throws IOException {
+        write(file, IndexedGraph.of(g, new HeapStorage()), tree);
+    }
+
+    public static void write(Path file, IndexedGraph g) throws IOException {
+        write(file, g, null);
+    }
+
+    public static void write(Path file, Dijkstra tree) throws IOException {
+        write(file, tree.getGraph(), tree);
+    }
+
+    private static void write(Path file, IndexedGraph g, Dijkstra tree) throws IOException {
+        int n = g.size();
+        int m = g.edgeCount();
+        int adjacent = g.adjacent.length();
+        if (tree != null && (tree.getGraph().size() != n || tree.getGraph().edgeCount() != m))
+            throw new IllegalArgumentException("Tree was not grown on this graph");
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(tree == null ? 0 : FLAG_TREE);
+        header.putInt(n);
+        header.putInt(m);
+        header.putInt(tree == null ? -1 : tree.getRootIndex());
+        header.putInt(adjacent);
+        header.putInt(0); // reserved
+        header.putLong(payloadLength(n, m, adjacent, tree != null));
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, HEADER_SIZE - 8);
+
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        g.storage.acquire();
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                SectionWriter out = new SectionWriter(ch, crc);
+                out.doubles(g.x);
+                out.doubles(g.y);
+                out.doubles(g.weight);
+                if (tree != null) {
+                    for (int i = 0 ; i < n ; i++) out.putDouble(tree.getDistance(i));
+                }
+                out.ints(g.src);
+                out.ints(g.dst);
+                out.ints(g.firstEdge);
+                out.ints(g.adjacent);
+                if (tree != null) {
+                    for (int i = 0 ; i < n ; i++) out.putInt(tree.getPredecessorEdge(i));
+                }
+                out.flush();
+
+                // The header goes in last, once the checksum is known
+                header.putLong(crc.getValue());
+                header.flip();
+                for (long position = 0 ; header.hasRemaining() ; ) position += ch.write(header, position);
+                ch.force(true);
+            }
+            setPermissions(tmp, file);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory(dir);
+        } finally {
+            g.storage.release();
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /*
+      Temporary files are created readable by the owner only, give
+      the snapshot the permissions of the file it replaces instead.
+     */
+    private static void setPermissions(Path tmp, Path file) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(tmp, PosixFileAttributeView.class);
+        if (view == null) return;
+        view.setPermissions(Files.exists(file) ? Files.getPosixFilePermissions(file) : DEFAULT_PERMISSIONS);
+    }
+
+    /*
+      Makes the rename durable. Directories cannot be opened for
+      syncing on every platform (e.g. Windows), where this is
+      skipped, but a failing sync is an error.
+     */
+    private static void syncDirectory(Path dir) throws IOException {
+        FileChannel ch;
+        try {
+            ch = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (FileChannel c = ch) {
+            c.force(true);
+        }
+    }
+
+    /**
+     * Maps a snapshot. The caller closes it once the graph and the
+     * tree are no longer used.
+     */
+    public static GraphSnapshot read(Path file) throws IOException {
+        MappedStorage storage = new MappedStorage();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(file, ch, storage);
+        } catch (IOException | RuntimeException e) {
+            storage.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the graph of a snapshot without creating any Node or
+     * Edge objects. The caller closes the graph's storage once it
+     * is no longer used.
+     */
+    public static IndexedGraph readIndexed(Path file) throws IOException {
+        return read(file).getIndexedGraph();
+    }
+
+    private static GraphSnapshot read(Path file, FileChannel ch, MappedStorage storage) throws IOException {
+        if (ch.size() < HEADER_SIZE)
+            throw new IOException("Not a graph snapshot, file too short: " + file);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(ch, header, 0);
+        header.flip();
+
+        if (header.getInt() != MAGIC)
+            throw new IOException("Not a graph snapshot, bad magic: " + file);
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported snapshot version " + version + ", expected " + VERSION);
+        boolean hasTree = (header.getInt() & FLAG_TREE) != 0;
+        int n = header.getInt();
+        int m = header.getInt();
+        int root = header.getInt();
+        int adjacent = header.getInt();
+        header.getInt(); // reserved
+        long payload = header.getLong();
+        long crc = header.getLong();
+
+        if (n < 0 || m < 0 || adjacent < 0 || payload != payloadLength(n, m, adjacent, hasTree)
+                || payload != ch.size() - HEADER_SIZE)
+            throw new IOException("Corrupt snapshot, section sizes do not match the file: " + file);
+        if (checksum(ch, header.array()) != crc)
+            throw new IOException("Corrupt snapshot, checksum mismatch: " + file);
+        if (hasTree && (root < 0 || root >= n))
+            throw new IOException("Corrupt snapshot, root out of range: " + root);
+
+        SectionReader in = new SectionReader(ch, storage);
+        DoubleArray x = in.doubles(n);
+        DoubleArray y = in.doubles(n);
+        DoubleArray weight = in.doubles(m);
+        DoubleArray dist = hasTree ? in.doubles(n) : null;
+        IntArray src = in.ints(m);
+        IntArray dst = in.ints(m);
+        IntArray firstEdge = in.ints(n + 1);
+        IntArray adjacency = in.ints(adjacent);
+        IntArray pred = hasTree ? in.ints(n) : null;
+
+        IndexedGraph g = new IndexedGraph(storage, x, y, src, dst, weight, firstEdge, adjacency);
+        checkIndices(g, pred);
+        return new GraphSnapshot(g, hasTree ? Dijkstra.fromTree(g, null, root, dist, pred) : null);
+    }
+
+    /*
+      The checksum only guards against accidental corruption, so
+      every index is checked before the graph is searched.
+     */
+    private static void checkIndices(IndexedGraph g, IntArray pred) throws IOException {
+        int n = g.size();
+        int m = g.edgeCount();
+        for (int e = 0 ; e < m ; e++) {
+            checkIndex(g.src.get(e), 0, n, "node");
+            checkIndex(g.dst.get(e), 0, n, "node");
+        }
+        if (g.firstEdge.get(0) != 0 || g.firstEdge.get(n) != g.adjacent.length())
+            throw new IOException("Corrupt snapshot, adjacency does not cover the edges");
+        for (int v = 0 ; v < n ; v++) {
+            if (g.firstEdge.get(v) > g.firstEdge.get(v + 1))
+                throw new IOException("Corrupt snapshot, adjacency of node " + v + " out of order");
+        }
+        for (int j = 0 ; j < g.adjacent.length() ; j++) {
+            checkIndex(g.adjacent.get(j), 0, m, "edge");
+        }
+        if (pred == null) return;
+        for (int v = 0 ; v < n ; v++) {
+            checkIndex(pred.get(v), -1, m, "edge");
+        }
+    }
+
+    private static void checkIndex(int i, int min, int max, String what) throws IOException {
+        if (i < min || i >= max) throw new IOException("Corrupt snapshot, " + what + " index out of range: " + i);
+    }
+
+    static long payloadLength(int n, int m, int adjacent, boolean hasTree) {
+        long doubles = 2L * n + m + (hasTree ? n : 0);
+        long ints = 2L * m + (n + 1L) + adjacent + (hasTree ? n : 0);
+        return 8 * doubles + 4 * ints;
+    }
+
+    // CRC32 of the header up to the checksum followed by the payload
+    private static long checksum(FileChannel ch, byte[] header) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(header, 0, HEADER_SIZE - 8);
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK);
+        for (long position = HEADER_SIZE ; position < ch.size() ; position += chunk.position()) {
+            chunk.clear();
+            chunk.limit((int)Math.min(CHUNK, ch.size() - position));
+            readFully(ch, chunk, position);
+            crc.update(chunk.array(), 0, chunk.position());
+        }
+        return crc.getValue();
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = ch.read(buf, position);
+            if (read < 0) throw new EOFException("Snapshot ended unexpectedly");
+            position += read;
+        }
+    }
+
+    /*
+      Streams the payload through a small buffer, updating the
+      checksum on the way, so no section is ever held in full.
+     */
+    private static class SectionWriter {
+        final FileChannel ch;
+        final CRC32 crc;
+        final ByteBuffer buf = ByteBuffer.allocate(CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+        long position = HEADER_SIZE;
+
+        SectionWriter(FileChannel ch, CRC32 crc) {
+            this.ch = ch;
+            this.crc = crc;
+        }
+
+        void putDouble(double value) throws IOException {
+            if (buf.remaining() < 8) flush();
+            buf.putDouble(value);
+        }
+
+        void putInt(int value) throws IOException {
+            if (buf.remaining() < 4) flush();
+            buf.putInt(value);
+        }
+
+        void doubles(DoubleArray values) throws IOException {
+            for (int i = 0 ; i < values.length() ; i++) putDouble(values.get(i));
+        }
+
+        void ints(IntArray values) throws IOException {
+            for (int i = 0 ; i < values.length() ; i++) putInt(values.get(i));
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            crc.update(buf.array(), 0, buf.limit());
+            while (buf.hasRemaining()) position += ch.write(buf, position);
+            buf.clear();
+        }
+    }
+
+    // Maps the sections one after another, each on its own
+    private static class SectionReader {
+        final FileChannel ch;
+        final MappedStorage storage;
+        long position = HEADER_SIZE;
+
+        SectionReader(FileChannel ch, MappedStorage storage) {
+            this.ch = ch;
+            this.storage = storage;
+        }
+
+        DoubleArray doubles(int length) throws IOException {
+            DoubleArray values = storage.mapDoubles(ch, position, length);
+            position += 8L * length;
+            return values;
+        }
+
+        IntArray ints(int length) throws IOException {
+            IntArray values = storage.mapInts(ch, position, length);
+            position += 4L * length;
+            return values;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.trusanen.dijkstra.storage;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base of the storages whose arrays are views of direct or mapped
+ * ByteBuffers. Keeps track of the arrays and their users and frees
+ * the buffers once the storage is closed and the last user has
+ * released it.
+ *
+ * An array whose buffer has been freed throws a NullPointerException
+ * on the thread that closed the storage or released it last. Other
+ * threads must hold the storage with acquire() while they use its
+ * arrays; without it, using an array after close is undefined and
+ * may crash the JVM.
+ */
+abstract class BufferStorage implements Storage {
+    private static final Releaser RELEASER = Releaser.find();
+
+    private final List<BufferArray> arrays = new ArrayList<BufferArray>();
+    private long bytes = 0;
+    private int users = 0;
+    private boolean closed = false;
+
+    synchronized IntArray registerInts(ByteBuffer buffer, int length) {
+        checkOpen();
+        BufferIntArray array = new BufferIntArray(buffer, length);
+        arrays.add(array);
+        bytes += buffer.capacity();
+        return array;
+    }
+
+    synchronized DoubleArray registerDoubles(ByteBuffer buffer, int length) {
+        checkOpen();
+        BufferDoubleArray array = new BufferDoubleArray(buffer, length);
+        arrays.add(array);
+        bytes += buffer.capacity();
+        return array;
+    }
+
+    synchronized void checkOpen() {
+        if (closed) throw new IllegalStateException("Storage is closed");
+    }
+
+    /**
+     * Returns the amount of memory held by this storage in bytes.
+     */
+    public synchronized long allocatedBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void acquire() {
+        checkOpen();
+        users++;
+    }
+
+    @Override
+    public synchronized void release() {
+        if (users == 0) throw new IllegalStateException("Storage released more often than acquired");
+        users--;
+        if (closed && users == 0) free();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        if (users == 0) free();
+    }
+
+    private void free() {
+        for (BufferArray array : arrays) {
+            ByteBuffer buffer = array.buffer;
+            array.buffer = null;
+            RELEASER.release(buffer);
+        }
+        arrays.clear();
+        bytes = 0;
+    }
+
+    abstract static class BufferArray {
+        ByteBuffer buffer;
+        final int length;
+
+        BufferArray(ByteBuffer buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+    }
+
+    static class BufferIntArray extends BufferArray implements IntArray {
+        BufferIntArray(ByteBuffer buffer, int length) {
+            super(buffer, length);
+        }
+
+        public int get(int i) {
+            return buffer.getInt(i << 2);
+        }
+
+        public void set(int i, int value) {
+            buffer.putInt(i << 2, value);
+        }
+
+        public void fill(int value) {
+            for (int i = 0 ; i < length ; i++) buffer.putInt(i << 2, value);
+        }
+    }
+
+    static class BufferDoubleArray extends BufferArray implements DoubleArray {
+        BufferDoubleArray(ByteBuffer buffer, int length) {
+            super(buffer, length);
+        }
+
+        public double get(int i) {
+            return buffer.getDouble(i << 3);
+        }
+
+        public void set(int i, double value) {
+            buffer.putDouble(i << 3, value);
+        }
+
+        public void fill(double value) {
+            for (int i = 0 ; i < length ; i++) buffer.putDouble(i << 3, value);
+        }
+    }
+
+    /*
+      Frees a direct or mapped buffer right away. There is no public
+      API for this before the foreign memory API, so it goes through
+      Unsafe.invokeCleaner on Java 9+ and the buffer's Cleaner on
+      Java 8. If neither is reachable the buffer is left to the
+      garbage collector, which frees it once it is unreachable.
+     */
+    private abstract static class Releaser {
+        abstract void free(ByteBuffer buffer) throws Exception;
+
+        static Releaser find() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                final Object unsafe = field.get(null);
+                final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                return new Releaser() {
+                    void free(ByteBuffer buffer) throws Exception {
+                        invokeCleaner.invoke(unsafe, buffer);
+                    }
+                };
+            } catch (Exception | LinkageError e) {
+                // Not Java 9+, fall through to the Java 8 cleaner
+            }
+            try {
+                final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                return new Releaser() {
+                    void free(ByteBuffer buffer) throws Exception {
+                        clean.invoke(cleaner.invoke(buffer));
+                    }
+                };
+            } catch (Exception | LinkageError e) {
+                return new Releaser() {
+                    void free(ByteBuffer buffer) {
+                    }
+                };
+            }
+        }
+
+        void release(ByteBuffer buffer) {
+            try {
+                free(buffer);
+            } catch (Exception e) {
+                // Leave it to the garbage collector
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.trusanen.dijkstra.storage;
+
+/**
+ * A fixed length double array allocated from a Storage.
+ */
+public interface DoubleArray {
+    int length();
+    double get(int i);
+    void set(int i, double value);
+    void fill(double value);
+}
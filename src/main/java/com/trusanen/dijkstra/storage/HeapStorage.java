@@ -0,0 +1,85 @@
+package com.trusanen.dijkstra.storage;
+
+import java.util.Arrays;
+
+/**
+ * Storage backed by ordinary Java arrays, left to the garbage
+ * collector. Closing it is a no-op.
+ */
+public class HeapStorage implements Storage {
+
+    @Override
+    public IntArray newIntArray(int length) {
+        return new HeapIntArray(length);
+    }
+
+    @Override
+    public DoubleArray newDoubleArray(int length) {
+        return new HeapDoubleArray(length);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    @Override
+    public void acquire() {
+    }
+
+    @Override
+    public void release() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    static class HeapIntArray implements IntArray {
+        final int[] values;
+
+        HeapIntArray(int length) {
+            values = new int[length];
+        }
+
+        public int length() {
+            return values.length;
+        }
+
+        public int get(int i) {
+            return values[i];
+        }
+
+        public void set(int i, int value) {
+            values[i] = value;
+        }
+
+        public void fill(int value) {
+            Arrays.fill(values, value);
+        }
+    }
+
+    static class HeapDoubleArray implements DoubleArray {
+        final double[] values;
+
+        HeapDoubleArray(int length) {
+            values = new double[length];
+        }
+
+        public int length() {
+            return values.length;
+        }
+
+        public double get(int i) {
+            return values[i];
+        }
+
+        public void set(int i, double value) {
+            values[i] = value;
+        }
+
+        public void fill(double value) {
+            Arrays.fill(values, value);
+        }
+    }
+}
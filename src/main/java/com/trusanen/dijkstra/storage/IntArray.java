@@ -0,0 +1,11 @@
+package com.trusanen.dijkstra.storage;
+
+/**
+ * A fixed length int array allocated from a Storage.
+ */
+public interface IntArray {
+    int length();
+    int get(int i);
+    void set(int i, int value);
+    void fill(int value);
+}
@@ -0,0 +1,46 @@
+package com.trusanen.dijkstra.storage;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only storage over little-endian sections of a memory mapped
+ * file, e.g. a graph snapshot.
+ *
+ * The arrays are views of the file, so nothing is copied when it is
+ * loaded and pages are read in as the arrays are used. New arrays
+ * cannot be allocated and writing to an array throws a
+ * ReadOnlyBufferException. Closing the storage unmaps the sections.
+ */
+public class MappedStorage extends BufferStorage {
+
+    public IntArray mapInts(FileChannel ch, long offset, int length) throws IOException {
+        return registerInts(map(ch, offset, length, 4), length);
+    }
+
+    public DoubleArray mapDoubles(FileChannel ch, long offset, int length) throws IOException {
+        return registerDoubles(map(ch, offset, length, 8), length);
+    }
+
+    private MappedByteBuffer map(FileChannel ch, long offset, int length, int width) throws IOException {
+        checkOpen();
+        long bytes = (long)length * width;
+        if (length < 0 || bytes > Integer.MAX_VALUE)
+            throw new IOException("Section of " + length + " values cannot be mapped");
+        MappedByteBuffer buffer = ch.map(FileChannel.MapMode.READ_ONLY, offset, bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    @Override
+    public IntArray newIntArray(int length) {
+        throw new UnsupportedOperationException("Mapped storage is read-only");
+    }
+
+    @Override
+    public DoubleArray newDoubleArray(int length) {
+        throw new UnsupportedOperationException("Mapped storage is read-only");
+    }
+}
@@ -0,0 +1,38 @@
+package com.trusanen.dijkstra.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Storage backed by direct ByteBuffers, outside of the Java heap.
+ *
+ * Multi-gigabyte graphs and search state allocated here are
+ * invisible to the garbage collector, which then only has to deal
+ * with a handful of small buffer objects.
+ *
+ * The memory is released when the storage is closed and no search
+ * holds it any more, instead of whenever the collector gets around
+ * to the buffers. A single array is limited to Integer.MAX_VALUE
+ * bytes.
+ */
+public class OffHeapStorage extends BufferStorage {
+
+    @Override
+    public IntArray newIntArray(int length) {
+        return registerInts(allocate(length, 4), length);
+    }
+
+    @Override
+    public DoubleArray newDoubleArray(int length) {
+        return registerDoubles(allocate(length, 8), length);
+    }
+
+    private ByteBuffer allocate(int length, int width) {
+        checkOpen();
+        if (length < 0) throw new IllegalArgumentException("Negative length: " + length);
+        long bytes = (long)length * width;
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Array too large for a direct buffer: " + bytes + " bytes");
+        return ByteBuffer.allocateDirect((int)bytes).order(ByteOrder.nativeOrder());
+    }
+}
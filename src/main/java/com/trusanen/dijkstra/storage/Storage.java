@@ -0,0 +1,45 @@
+package com.trusanen.dijkstra.storage;
+
+import java.io.Closeable;
+
+/**
+ * Allocates the primitive arrays the graph and the search state
+ * are stored in.
+ *
+ * The engine only talks to IntArray and DoubleArray, so the same
+ * code runs on plain Java arrays (HeapStorage) or on memory outside
+ * the Java heap (OffHeapStorage). A storage owns everything it has
+ * allocated: closing it releases all of its arrays at once.
+ *
+ * Code using the arrays brackets its work with acquire() and
+ * release(). acquire() fails with an IllegalStateException once the
+ * storage is closed, and close() only frees the memory after the
+ * last user has released it, so a search running while the storage
+ * is closed finishes on valid memory.
+ *
+ * Allocation is thread-safe, access to a single array is not
+ * synchronized.
+ */
+public interface Storage extends Closeable {
+    IntArray newIntArray(int length);
+    DoubleArray newDoubleArray(int length);
+
+    boolean isClosed();
+
+    /**
+     * Registers a user of the arrays, which are not freed before
+     * the matching release().
+     *
+     * @throws IllegalStateException if the storage is closed
+     */
+    void acquire();
+
+    void release();
+
+    /**
+     * Releases all arrays allocated from this storage once no user
+     * holds it any more. Arrays must not be used after that.
+     */
+    @Override
+    void close();
+}
@@ -2,11 +2,15 @@ package com.trusanen.dijkstra;
 
 import com.trusanen.dijkstra.models.Edge;
 import com.trusanen.dijkstra.models.Graph;
+import com.trusanen.dijkstra.models.IndexedGraph;
 import com.trusanen.dijkstra.models.Node;
+import com.trusanen.dijkstra.storage.OffHeapStorage;
 import org.junit.Test;
 
 import java.util.List;
 
+import static org.junit.Assert.*;
+
 /**
  * Created by Topias on 24.10.2017.
  */
@@ -75,6 +79,29 @@ public class DijkstraTest {
 
     // TODO: more tests to verify the returned paths are correct
 
+    @Test
+    public void testOffHeapMatchesOnHeap() {
+        Graph g = getRandomGraph(1000, 3000);
+        Dijkstra expected = new Dijkstra(g, g.nodes[0]);
+        try (OffHeapStorage storage = new OffHeapStorage()) {
+            Dijkstra alg = new Dijkstra(IndexedGraph.of(g, storage), 0, storage);
+            for (int i = 0 ; i < g.nodes.length ; i++) {
+                assertEquals(expected.getDistance(i), alg.getDistance(i), 0);
+                assertArrayEquals(expected.getPathIndices(i), alg.getPathIndices(i));
+            }
+        }
+    }
+
+    @Test
+    public void testDoesNotModifyNodes() {
+        Graph g = getRandomGraph(50, 150);
+        new Dijkstra(g, g.nodes[0]);
+        for (Node n : g.nodes) {
+            assertTrue(n.edges.isEmpty());
+            assertNull(n.predecessor);
+        }
+    }
+
     @Test
     public void testRandomPaths() {
         int times = 10;
@@ -0,0 +1,226 @@
+package com.trusanen.dijkstra;
+
+import com.trusanen.dijkstra.models.Edge;
+import com.trusanen.dijkstra.models.Graph;
+import com.trusanen.dijkstra.models.IndexedGraph;
+import com.trusanen.dijkstra.models.Node;
+import com.trusanen.dijkstra.storage.HeapStorage;
+import com.trusanen.dijkstra.storage.OffHeapStorage;
+import com.trusanen.dijkstra.storage.Storage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class KShortestPathsTest {
+
+    double delta = 1e-9;
+
+    private Graph getRandomGraph(long seed, int n, int e) {
+        Random random = new Random(seed);
+        Node[] nodes = new Node[n];
+        for (int i = 0 ; i < n ; i++) {
+            double x = random.nextDouble()*2;
+            nodes[i] = new Node(x, random.nextDouble()*2);
+        }
+
+        Edge[] edges = new Edge[e];
+        for (int i = 0 ; i < e ; i++) {
+            Node src = nodes[random.nextInt(n)];
+            edges[i] = new Edge(i, src, nodes[random.nextInt(n)]);
+        }
+
+        return new Graph(nodes, edges);
+    }
+
+    private Graph getRandomGraph(int n, int e) {
+        return getRandomGraph(new Random().nextLong(), n, e);
+    }
+
+    private double length(List<Node> path) {
+        double length = 0;
+        for (int i = 1 ; i < path.size() ; i++) {
+            Node a = path.get(i-1);
+            Node b = path.get(i);
+            length += (float)Math.sqrt(Math.pow(a.getX() - b.getX(), 2) + Math.pow(a.getY() - b.getY(), 2));
+        }
+        return length;
+    }
+
+    // Lengths of all loopless paths between from and to, by brute force
+    private void allPaths(Graph g, Node curr, Node to, Set<Node> visited, double length, List<Double> lengths) {
+        if (curr == to) {
+            lengths.add(length);
+            return;
+        }
+        visited.add(curr);
+        for (Edge e : g.edges) {
+            Node other = e.getOther(curr);
+            if (other == null || other == curr || visited.contains(other)) continue;
+            allPaths(g, other, to, visited, length + e.weight, lengths);
+        }
+        visited.remove(curr);
+    }
+
+    @Test
+    public void testLine() {
+        Node a = new Node(0,0);
+        Node b = new Node(1,0);
+        Node c = new Node(2,0);
+        Node d = new Node(1,1);
+
+        Node[] nodes = {a, b, c, d};
+        Edge[] edges = {new Edge(0, a, b), new Edge(1, b, c), new Edge(2, a, d), new Edge(3, d, c)};
+
+        KShortestPaths alg = new KShortestPaths(new Graph(nodes, edges));
+        List<List<Node>> paths = alg.getPaths(0, 2, 5);
+
+        assertEquals(2, paths.size());
+        assertEquals(3, paths.get(0).size());
+        assertSame(a, paths.get(0).get(0));
+        assertSame(b, paths.get(0).get(1));
+        assertSame(c, paths.get(0).get(2));
+        assertEquals(3, paths.get(1).size());
+        assertSame(d, paths.get(1).get(1));
+    }
+
+    @Test
+    public void testSameNode() {
+        Graph g = getRandomGraph(10, 20);
+        List<List<Node>> paths = new KShortestPaths(g).getPaths(3, 3, 4);
+        assertEquals(1, paths.size());
+        assertEquals(1, paths.get(0).size());
+    }
+
+    @Test
+    public void testUnreachable() {
+        Node[] nodes = {new Node(0,0), new Node(1,0), new Node(2,0)};
+        Edge[] edges = {new Edge(0, nodes[0], nodes[1])};
+        assertTrue(new KShortestPaths(new Graph(nodes, edges)).getPaths(0, 2, 3).isEmpty());
+    }
+
+    @Test
+    public void testDoesNotModifyNodes() {
+        Graph g = getRandomGraph(50, 150);
+        new KShortestPaths(g).getPaths(0, 1, 5);
+        for (Node n : g.nodes) {
+            assertTrue(n.edges.isEmpty());
+            assertNull(n.predecessor);
+        }
+    }
+
+    @Test
+    public void testAgainstBruteForce() {
+        int times = 20;
+        int k = 10;
+        for (int t = 0 ; t < times ; t++) {
+            Graph g = getRandomGraph(9, 18);
+            KShortestPaths alg = new KShortestPaths(g);
+            List<List<Node>> paths = alg.getPaths(0, 1, k);
+
+            List<Double> expected = new ArrayList<Double>();
+            allPaths(g, g.nodes[0], g.nodes[1], new HashSet<Node>(), 0, expected);
+            Collections.sort(expected);
+
+            assertEquals(Math.min(k, expected.size()), paths.size());
+            for (int i = 0 ; i < paths.size() ; i++) {
+                List<Node> path = paths.get(i);
+                assertSame(g.nodes[0], path.get(0));
+                assertSame(g.nodes[1], path.get(path.size()-1));
+                assertEquals(path.size(), new HashSet<Node>(path).size());
+                assertEquals(expected.get(i), length(path), delta);
+            }
+        }
+    }
+
+    @Test
+    public void testLargeCoordinates() {
+        // Far from the target the A* priorities newDist + h round
+        // away the tiny differences between distances in the cluster
+        int times = 500;
+        int n = 40;
+        for (int t = 0 ; t < times ; t++) {
+            Node[] nodes = new Node[n];
+            for (int i = 0 ; i < n-1 ; i++) {
+                nodes[i] = new Node(1e7 + Math.random()*1e-6, 1e7 + Math.random()*1e-6);
+            }
+            nodes[n-1] = new Node(0, 0);
+            Edge[] edges = new Edge[3*n];
+            for (int i = 0 ; i < edges.length ; i++) {
+                edges[i] = new Edge(i, nodes[(int)(Math.random()*n)], nodes[(int)(Math.random()*n)]);
+            }
+            List<List<Node>> paths = new KShortestPaths(new Graph(nodes, edges)).getPaths(0, n-1, 30);
+            for (List<Node> path : paths) {
+                assertSame(nodes[n-1], path.get(path.size()-1));
+            }
+        }
+    }
+
+    private IndexedGraph getRandomIndexedGraph(long seed, int n, int e, Storage storage) {
+        return IndexedGraph.of(getRandomGraph(seed, n, e), storage);
+    }
+
+    @Test
+    public void testOffHeapMatchesOnHeap() {
+        int times = 10;
+        int k = 5;
+        Random random = new Random();
+        for (int t = 0 ; t < times ; t++) {
+            long seed = random.nextLong();
+            Storage heap = new HeapStorage();
+            List<int[]> expected = new KShortestPaths(getRandomIndexedGraph(seed, 500, 1500, heap), heap)
+                    .getPathIndices(0, 1, k);
+            try (OffHeapStorage storage = new OffHeapStorage()) {
+                List<int[]> paths = new KShortestPaths(getRandomIndexedGraph(seed, 500, 1500, storage), storage)
+                        .getPathIndices(0, 1, k);
+                assertEquals(expected.size(), paths.size());
+                for (int i = 0 ; i < paths.size() ; i++) {
+                    assertArrayEquals(expected.get(i), paths.get(i));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNodesWithoutGraph() {
+        Graph g = getRandomGraph(10, 20);
+        Storage storage = new HeapStorage();
+        new KShortestPaths(IndexedGraph.of(g, storage), storage).getPaths(0, 1, 2);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedStorage() {
+        Graph g = getRandomGraph(10, 20);
+        OffHeapStorage storage = new OffHeapStorage();
+        KShortestPaths alg = new KShortestPaths(IndexedGraph.of(g, storage), storage);
+        alg.getPathIndices(0, 1, 2);
+        storage.close();
+        alg.getPathIndices(0, 1, 2);
+    }
+
+    @Test
+    public void testRandomPaths() {
+        int times = 10;
+        int k = 10;
+        long tic; long toc; double ts = 0;
+        int nodes = 200000;
+        int edges = 400000;
+        for (int i = 0 ; i < times ; i++) {
+            Graph g = getRandomGraph(nodes, edges);
+            KShortestPaths alg = new KShortestPaths(g);
+            tic = System.nanoTime();
+            alg.getPaths((int)(Math.random()*nodes), (int)(Math.random()*nodes), k);
+            toc = System.nanoTime();
+            ts += (toc - tic) * 1e-6;
+        }
+        System.out.println("Did " + times + " queries of " + k + " shortest paths with a graph of "
+                + nodes + " nodes and " + edges + " edges");
+        System.out.println("Querying took on average: " + ts/times + " ms");
+    }
+}
@@ -0,0 +1,171 @@
+package com.trusanen.dijkstra;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.trusanen.dijkstra.models.IndexedGraph;
+import com.trusanen.dijkstra.storage.DoubleArray;
+import com.trusanen.dijkstra.storage.HeapStorage;
+import com.trusanen.dijkstra.storage.IntArray;
+import com.trusanen.dijkstra.storage.OffHeapStorage;
+import com.trusanen.dijkstra.storage.Storage;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares k shortest path queries on a graph kept on the Java heap
+ * with the same queries on a graph kept off-heap.
+ *
+ * Each backing runs in a JVM of its own, so neither inherits the
+ * other's JIT profile or heap. Both build the same IndexedGraph
+ * straight from primitive arrays and run the same seeded queries,
+ * and the paths they find must be identical.
+ *
+ * Run with 'gradle benchmark'.
+ */
+public class StorageBenchmark {
+    static final long SEED = 42;
+    static final int NODES = 200000;
+    static final int EDGES = 400000;
+    static final int K = 10;
+    static final int WARMUP = 10;
+    static final int QUERIES = 60;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            run(args[0]);
+            return;
+        }
+        System.out.println("Running " + (QUERIES - WARMUP) + " queries of " + K
+                + " shortest paths with a graph of " + NODES + " nodes and " + EDGES + " edges");
+        String heap = fork("heap");
+        String offHeap = fork("offheap");
+        if (!hash(heap).equals(hash(offHeap)))
+            throw new AssertionError("On- and off-heap runs found different paths");
+    }
+
+    // Runs the benchmark for one backing in a new JVM and returns its result line
+    private static String fork(String backing) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                StorageBenchmark.class.getName(), backing)
+                .redirectErrorStream(true)
+                .start();
+        String result = null;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line = in.readLine() ; line != null ; line = in.readLine()) {
+                System.out.println(line);
+                if (line.startsWith("RESULT ")) result = line;
+            }
+        }
+        if (process.waitFor() != 0 || result == null)
+            throw new IllegalStateException("Benchmark run '" + backing + "' failed");
+        return result;
+    }
+
+    private static String hash(String result) {
+        return result.substring(result.lastIndexOf("paths=") + 6);
+    }
+
+    private static void run(String backing) {
+        Storage storage = backing.equals("offheap") ? new OffHeapStorage() : new HeapStorage();
+        try {
+            KShortestPaths alg = new KShortestPaths(getRandomIndexedGraph(SEED, NODES, EDGES, storage), storage);
+            Random random = new Random(SEED);
+            int[][] queries = new int[QUERIES][2];
+            for (int[] q : queries) {
+                q[0] = random.nextInt(NODES);
+                q[1] = random.nextInt(NODES);
+            }
+
+            for (int i = 0 ; i < WARMUP ; i++) {
+                alg.getPathIndices(queries[i][0], queries[i][1], K);
+            }
+            System.gc();
+            PauseListener pauses = new PauseListener();
+            long hash = 17;
+            long tic = System.nanoTime();
+            for (int i = WARMUP ; i < QUERIES ; i++) {
+                for (int[] path : alg.getPathIndices(queries[i][0], queries[i][1], K)) {
+                    for (int v : path) hash = 31 * hash + v;
+                }
+            }
+            long toc = System.nanoTime();
+            pauses.stop();
+
+            System.out.println(String.format("RESULT %s: %.2f queries/s, %d pauses, %d ms total, %d ms max, paths=%x",
+                    backing, (QUERIES - WARMUP) / ((toc - tic) * 1e-9),
+                    pauses.count.get(), pauses.total.get(), pauses.max.get(), hash));
+        } finally {
+            storage.close();
+        }
+    }
+
+    // Builds the graph straight into 'storage', without Node or Edge objects
+    private static IndexedGraph getRandomIndexedGraph(long seed, int n, int e, Storage storage) {
+        Random random = new Random(seed);
+        DoubleArray x = storage.newDoubleArray(n);
+        DoubleArray y = storage.newDoubleArray(n);
+        for (int i = 0 ; i < n ; i++) {
+            x.set(i, random.nextDouble()*2);
+            y.set(i, random.nextDouble()*2);
+        }
+        IntArray src = storage.newIntArray(e);
+        IntArray dst = storage.newIntArray(e);
+        for (int i = 0 ; i < e ; i++) {
+            src.set(i, random.nextInt(n));
+            dst.set(i, random.nextInt(n));
+        }
+        return new IndexedGraph(storage, x, y, src, dst);
+    }
+
+    /*
+      Sums the stop-the-world pauses reported by the collectors.
+      The collection time of GarbageCollectorMXBean also counts
+      concurrent work, which does not stop the queries.
+     */
+    private static class PauseListener {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong total = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+        final List<Runnable> removers = new ArrayList<Runnable>();
+
+        PauseListener() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (gc.getName().contains("Concurrent") || !(gc instanceof NotificationEmitter)) continue;
+                final NotificationEmitter emitter = (NotificationEmitter)gc;
+                final javax.management.NotificationListener listener = (notification, handback) -> {
+                    if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                        return;
+                    GarbageCollectionNotificationInfo info =
+                            GarbageCollectionNotificationInfo.from((CompositeData)notification.getUserData());
+                    long duration = info.getGcInfo().getDuration();
+                    count.incrementAndGet();
+                    total.addAndGet(duration);
+                    max.accumulateAndGet(duration, Math::max);
+                };
+                emitter.addNotificationListener(listener, null, null);
+                removers.add(() -> {
+                    try {
+                        emitter.removeNotificationListener(listener);
+                    } catch (Exception e) {
+                        // Already removed
+                    }
+                });
+            }
+        }
+
+        void stop() {
+            for (Runnable remover : removers) remover.run();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.trusanen.dijkstra.heap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class IndexMinBinaryHeapTest {
+
+    double delta = 1e-12;
+
+    @Test
+    public void testConstructor() {
+        IndexMinBinaryHeap q = new IndexMinBinaryHeap(1);
+        assertTrue(q.isEmpty());
+        assertFalse(q.contains(0));
+    }
+
+    @Test
+    public void testExtractInOrder() {
+        int n = 10000;
+        IndexMinBinaryHeap q = new IndexMinBinaryHeap(n);
+        double[] priorities = new double[n];
+        for (int i = 0 ; i < n ; i++) {
+            priorities[i] = Math.random()*1000;
+            q.insert(i, priorities[i]);
+        }
+        assertTrue(q.validate());
+
+        Arrays.sort(priorities);
+        for (int i = 0 ; i < n ; i++) {
+            int id = q.getMin();
+            assertFalse(q.contains(id));
+            assertEquals(priorities[i], q.priority(id), delta);
+        }
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void testDecreasePriority() {
+        int n = 1001;
+        IndexMinBinaryHeap q = new IndexMinBinaryHeap(n);
+        for (int i = 0 ; i < n ; i++) {
+            q.insert(i, 1000 + Math.random()*1000);
+        }
+        for (int i = n-1 ; i >= 0 ; i--) {
+            q.decreasePriority(i, i);
+            assertTrue(q.validate());
+        }
+        for (int i = 0 ; i < n ; i++) {
+            assertEquals(i, q.getMin());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalDecrease() {
+        IndexMinBinaryHeap q = new IndexMinBinaryHeap(1);
+        q.insert(0, 1);
+        q.decreasePriority(0, 2);
+    }
+
+    @Test
+    public void testInsertAfterExtractionAndClear() {
+        IndexMinBinaryHeap q = new IndexMinBinaryHeap(3);
+        q.insert(0, 3);
+        q.insert(1, 2);
+        assertEquals(1, q.getMin());
+        q.insert(1, 1);
+        q.insert(2, 0);
+        assertTrue(q.validate());
+        assertEquals(3, q.size());
+
+        q.clear();
+        assertTrue(q.isEmpty());
+        for (int i = 0 ; i < 3 ; i++) {
+            assertFalse(q.contains(i));
+        }
+        q.insert(2, 5);
+        assertEquals(2, q.getMin());
+    }
+}
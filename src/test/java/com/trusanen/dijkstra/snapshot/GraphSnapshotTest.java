@@ -0,0 +1,245 @@
+package com.trusanen.dijkstra.snapshot;
+
+import com.trusanen.dijkstra.Dijkstra;
+import com.trusanen.dijkstra.KShortestPaths;
+import com.trusanen.dijkstra.models.Edge;
+import com.trusanen.dijkstra.models.Graph;
+import com.trusanen.dijkstra.models.IndexedGraph;
+import com.trusanen.dijkstra.models.Node;
+import com.trusanen.dijkstra.storage.HeapStorage;
+import com.trusanen.dijkstra.storage.OffHeapStorage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class GraphSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Graph getRandomGraph(long seed, int n, int e) {
+        Random random = new Random(seed);
+        Node[] nodes = new Node[n];
+        for (int i = 0 ; i < n ; i++) {
+            double x = random.nextDouble()*2;
+            nodes[i] = new Node(x, random.nextDouble()*2);
+        }
+
+        Edge[] edges = new Edge[e];
+        for (int i = 0 ; i < e ; i++) {
+            Node src = nodes[random.nextInt(n)];
+            edges[i] = new Edge(i, src, nodes[random.nextInt(n)]);
+        }
+
+        return new Graph(nodes, edges);
+    }
+
+    private Graph getRandomGraph(int n, int e) {
+        return getRandomGraph(new Random().nextLong(), n, e);
+    }
+
+    private int indexOf(Graph g, Node node) {
+        for (int i = 0 ; i < g.nodes.length ; i++) {
+            if (g.nodes[i] == node) return i;
+        }
+        return -1;
+    }
+
+    @Test
+    public void testGraphRoundTrip() throws IOException {
+        Graph g = getRandomGraph(1000, 3000);
+        Path file = folder.getRoot().toPath().resolve("graph.snapshot");
+        GraphSnapshot.write(file, g);
+
+        try (GraphSnapshot snapshot = GraphSnapshot.read(file)) {
+            assertFalse(snapshot.hasTree());
+            assertNull(snapshot.getTree());
+
+            Graph h = snapshot.getGraph();
+            assertEquals(g.nodes.length, h.nodes.length);
+            assertEquals(g.edges.length, h.edges.length);
+            for (int i = 0 ; i < g.nodes.length ; i++) {
+                assertEquals(g.nodes[i].getX(), h.nodes[i].getX(), 0);
+                assertEquals(g.nodes[i].getY(), h.nodes[i].getY(), 0);
+            }
+            for (int i = 0 ; i < g.edges.length ; i++) {
+                assertEquals(indexOf(g, g.edges[i].src), indexOf(h, h.edges[i].src));
+                assertEquals(indexOf(g, g.edges[i].dst), indexOf(h, h.edges[i].dst));
+                assertEquals(g.edges[i].weight, h.edges[i].weight, 0);
+            }
+        }
+    }
+
+    @Test
+    public void testTreeRoundTrip() throws IOException {
+        Graph g = getRandomGraph(1000, 3000);
+        Dijkstra alg = new Dijkstra(g, g.nodes[0]);
+        Path file = folder.getRoot().toPath().resolve("tree.snapshot");
+        GraphSnapshot.write(file, g, alg);
+
+        try (GraphSnapshot snapshot = GraphSnapshot.read(file)) {
+            assertTrue(snapshot.hasTree());
+            Dijkstra restored = snapshot.getTree();
+            assertEquals(0, restored.getRootIndex());
+            for (int i = 0 ; i < g.nodes.length ; i++) {
+                assertEquals(alg.getDistance(i), restored.getDistance(i), 0);
+                assertArrayEquals(alg.getPathIndices(i), restored.getPathIndices(i));
+            }
+        }
+    }
+
+    @Test
+    public void testIndexedRoundTrip() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.snapshot");
+        try (OffHeapStorage storage = new OffHeapStorage()) {
+            IndexedGraph g = IndexedGraph.of(getRandomGraph(1000, 3000), storage);
+            GraphSnapshot.write(file, new Dijkstra(g, 0, storage));
+
+            IndexedGraph h = GraphSnapshot.readIndexed(file);
+            try {
+                assertEquals(g.size(), h.size());
+                assertEquals(g.edgeCount(), h.edgeCount());
+                assertEquals(g.adjacent.length(), h.adjacent.length());
+                for (int i = 0 ; i < g.size() ; i++) {
+                    assertEquals(g.x.get(i), h.x.get(i), 0);
+                    assertEquals(g.y.get(i), h.y.get(i), 0);
+                }
+                for (int i = 0 ; i <= g.size() ; i++) {
+                    assertEquals(g.firstEdge.get(i), h.firstEdge.get(i));
+                }
+                for (int i = 0 ; i < g.edgeCount() ; i++) {
+                    assertEquals(g.src.get(i), h.src.get(i));
+                    assertEquals(g.dst.get(i), h.dst.get(i));
+                    assertEquals(g.weight.get(i), h.weight.get(i), 0);
+                }
+                for (int i = 0 ; i < g.adjacent.length() ; i++) {
+                    assertEquals(g.adjacent.get(i), h.adjacent.get(i));
+                }
+            } finally {
+                h.storage.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSearchMapped() throws IOException {
+        Graph g = getRandomGraph(500, 1500);
+        Path file = folder.getRoot().toPath().resolve("graph.snapshot");
+        GraphSnapshot.write(file, g);
+
+        List<int[]> expected = new KShortestPaths(g).getPathIndices(0, 1, 5);
+        try (GraphSnapshot snapshot = GraphSnapshot.read(file)) {
+            List<int[]> paths = new KShortestPaths(snapshot.getIndexedGraph(), new HeapStorage())
+                    .getPathIndices(0, 1, 5);
+            assertEquals(expected.size(), paths.size());
+            for (int i = 0 ; i < paths.size() ; i++) {
+                assertArrayEquals(expected.get(i), paths.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testOverwriteExisting() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.snapshot");
+        GraphSnapshot.write(file, getRandomGraph(10, 20));
+        GraphSnapshot.write(file, getRandomGraph(30, 40));
+
+        try (GraphSnapshot snapshot = GraphSnapshot.read(file)) {
+            Graph h = snapshot.getGraph();
+            assertEquals(30, h.nodes.length);
+            assertEquals(40, h.edges.length);
+        }
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    private void flipByte(Path file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xFF);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptedPayload() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.snapshot");
+        GraphSnapshot.write(file, getRandomGraph(100, 200));
+        flipByte(file, GraphSnapshot.HEADER_SIZE + 5);
+        GraphSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptedRoot() throws IOException {
+        Graph g = getRandomGraph(100, 200);
+        Path file = folder.getRoot().toPath().resolve("tree.snapshot");
+        GraphSnapshot.write(file, g, new Dijkstra(g, g.nodes[0]));
+        // Root 0 becomes root 1, which is still a valid node
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(20);
+            raf.write(1);
+        }
+        GraphSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedFile() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.snapshot");
+        GraphSnapshot.write(file, getRandomGraph(100, 200));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 4);
+        }
+        GraphSnapshot.read(file);
+    }
+
+    @Test
+    public void testPermissions() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path file = folder.getRoot().toPath().resolve("graph.snapshot");
+        GraphSnapshot.write(file, getRandomGraph(10, 20));
+        assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-rw----"));
+        GraphSnapshot.write(file, getRandomGraph(10, 20));
+        assertEquals("rw-rw----", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+    }
+
+    @Test
+    public void testLaterSearch() throws IOException {
+        Graph g = getRandomGraph(100, 300);
+        Dijkstra alg = new Dijkstra(g, g.nodes[0]);
+        new Dijkstra(g, g.nodes[1]);
+        Path file = folder.getRoot().toPath().resolve("tree.snapshot");
+        GraphSnapshot.write(file, g, alg);
+
+        try (GraphSnapshot snapshot = GraphSnapshot.read(file)) {
+            Dijkstra restored = snapshot.getTree();
+            assertEquals(0, restored.getRootIndex());
+            for (int i = 0 ; i < g.nodes.length ; i++) {
+                assertEquals(alg.getDistance(i), restored.getDistance(i), 0);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTrailingBytes() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("graph.snapshot");
+        GraphSnapshot.write(file, getRandomGraph(10, 20));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(Integer.MAX_VALUE + 1L);
+        }
+        GraphSnapshot.read(file);
+    }
+}
@@ -0,0 +1,148 @@
+package com.trusanen.dijkstra.storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class StorageTest {
+
+    double delta = 1e-12;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void checkArrays(Storage storage) {
+        int n = 1000;
+        IntArray ints = storage.newIntArray(n);
+        DoubleArray doubles = storage.newDoubleArray(n);
+        assertEquals(n, ints.length());
+        assertEquals(n, doubles.length());
+        for (int i = 0 ; i < n ; i++) {
+            assertEquals(0, ints.get(i));
+            assertEquals(0, doubles.get(i), delta);
+        }
+
+        for (int i = 0 ; i < n ; i++) {
+            ints.set(i, -i);
+            doubles.set(i, i * 0.5);
+        }
+        for (int i = 0 ; i < n ; i++) {
+            assertEquals(-i, ints.get(i));
+            assertEquals(i * 0.5, doubles.get(i), delta);
+        }
+
+        ints.fill(7);
+        doubles.fill(Double.POSITIVE_INFINITY);
+        for (int i = 0 ; i < n ; i++) {
+            assertEquals(7, ints.get(i));
+            assertEquals(Double.POSITIVE_INFINITY, doubles.get(i), delta);
+        }
+    }
+
+    @Test
+    public void testHeapStorage() {
+        checkArrays(new HeapStorage());
+    }
+
+    @Test
+    public void testOffHeapStorage() {
+        OffHeapStorage storage = new OffHeapStorage();
+        checkArrays(storage);
+        assertEquals(1000 * 4 + 1000 * 8, storage.allocatedBytes());
+        storage.close();
+        assertEquals(0, storage.allocatedBytes());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testUseAfterClose() {
+        OffHeapStorage storage = new OffHeapStorage();
+        IntArray ints = storage.newIntArray(10);
+        storage.close();
+        ints.get(0);
+    }
+
+    @Test
+    public void testCloseWhileAcquired() {
+        OffHeapStorage storage = new OffHeapStorage();
+        IntArray ints = storage.newIntArray(10);
+        ints.set(3, 42);
+        storage.acquire();
+        storage.close();
+        assertTrue(storage.isClosed());
+        assertEquals(42, ints.get(3));
+        assertEquals(40, storage.allocatedBytes());
+
+        storage.release();
+        assertEquals(0, storage.allocatedBytes());
+        try {
+            ints.get(3);
+            fail("Array readable after release");
+        } catch (NullPointerException e) {
+            // Freed by the last release
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAcquireAfterClose() {
+        OffHeapStorage storage = new OffHeapStorage();
+        storage.close();
+        storage.acquire();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAllocateAfterClose() {
+        OffHeapStorage storage = new OffHeapStorage();
+        storage.close();
+        storage.newIntArray(10);
+    }
+
+    @Test
+    public void testMappedStorage() throws IOException {
+        Path file = folder.newFile().toPath();
+        ByteBuffer buf = ByteBuffer.allocate(4 + 10 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(-1);
+        for (int i = 0 ; i < 10 ; i++) buf.putInt(i * i);
+        Files.write(file, buf.array());
+
+        MappedStorage storage = new MappedStorage();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            IntArray ints = storage.mapInts(ch, 4, 10);
+            assertEquals(10, ints.length());
+            for (int i = 0 ; i < 10 ; i++) {
+                assertEquals(i * i, ints.get(i));
+            }
+            try {
+                ints.set(0, 1);
+                fail("Mapped array is writable");
+            } catch (ReadOnlyBufferException e) {
+                // Read-only
+            }
+        }
+        assertEquals(40, storage.allocatedBytes());
+        storage.close();
+        assertEquals(0, storage.allocatedBytes());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAllocateMapped() {
+        new MappedStorage().newIntArray(10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLarge() {
+        try (OffHeapStorage storage = new OffHeapStorage()) {
+            storage.newDoubleArray(Integer.MAX_VALUE / 4);
+        }
+    }
+}